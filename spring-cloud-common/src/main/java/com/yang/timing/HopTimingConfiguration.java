@@ -0,0 +1,47 @@
+package com.yang.timing;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * 跳间计时配置，各服务通过@Import(HopTimingConfiguration.class)引入
+ * 注意：和MySelfRule一样，这个配置类放在com.yang.timing包下，不在各服务@ComponentScan所扫描的包以及子包下面，避免被重复注册。
+ */
+@Configuration
+@EnableConfigurationProperties(HopTimingProperties.class)
+@ConditionalOnProperty(prefix = "hop.timing", name = "enabled", matchIfMissing = true)
+public class HopTimingConfiguration {
+
+    //跳名称优先使用Eureka的实例id，同一个服务的多个实例可以区分开
+    @Bean
+    public HopTimingRegistry hopTimingRegistry(@Value("${eureka.instance.instance-id:${spring.application.name:application}}") String hopName,
+                                               HopTimingProperties properties) {
+        return new HopTimingRegistry(hopName, properties.getSampleRate(), properties.getMaxOverheadMicros());
+    }
+
+    //尽量靠前，让计时覆盖其他过滤器的耗时；actuator的请求不计时
+    @Bean
+    public FilterRegistrationBean<HopTimingFilter> hopTimingFilter(HopTimingRegistry hopTimingRegistry, HopTimingProperties properties,
+                                                                   @Value("${management.endpoints.web.base-path:/actuator}") String actuatorBasePath) {
+        FilterRegistrationBean<HopTimingFilter> registration = new FilterRegistrationBean<>(
+                new HopTimingFilter(hopTimingRegistry, properties, actuatorBasePath));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    @Bean
+    public HopTimingEndpoint hopTimingEndpoint(HopTimingRegistry hopTimingRegistry) {
+        return new HopTimingEndpoint(hopTimingRegistry);
+    }
+
+    @Bean
+    public HopTimingJmxEndpointExtension hopTimingJmxEndpointExtension(HopTimingEndpoint hopTimingEndpoint,
+                                                                       HopTimingRegistry hopTimingRegistry) {
+        return new HopTimingJmxEndpointExtension(hopTimingEndpoint, hopTimingRegistry);
+    }
+}
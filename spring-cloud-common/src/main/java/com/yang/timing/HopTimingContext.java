@@ -0,0 +1,162 @@
+package com.yang.timing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次请求在本跳内的计时上下文，由HopTimingFilter绑定到当前线程
+ * 1、请求头X-Hop-Start：上游发出请求时的时间戳（毫秒），值为0表示上游决定不采样这条调用链。
+ * 2、响应头X-Hop-Timing：每一跳在下游的记录后面追加自己的记录，网关最终返回整条链路，例如：
+ *      spring-cloud-provider_8801;dur=850;wait=1000, spring-cloud-consumer_8085;dur=5320;wait=0;queue=1200, api-gateway;dur=7100
+ *      dur为本跳总耗时，wait为上游发出到本跳开始处理的等待（本跳是入口时没有），queue为本跳内Hystrix线程池排队时间，单位都是微秒。
+ *      每一跳的名称是eureka.instance.instance-id（没有配置时是spring.application.name），同一个服务的多个实例可以区分开。
+ * 3、Hystrix等线程池中的调用需要把上下文传递过去，见spring-cloud-web中的HopTimingHystrixConcurrencyStrategy。
+ * 4、各处计时代码把自己的耗时累加到overheadNanos，由HopTimingFilter在请求结束时记录到overhead直方图。
+ */
+public class HopTimingContext {
+
+    public static final String START_HEADER = "X-Hop-Start";
+
+    public static final String TIMING_HEADER = "X-Hop-Timing";
+
+    /** 上游决定不采样时共享的上下文，只用来把“不采样”继续传给下游 */
+    public static final HopTimingContext NOT_SAMPLED = new HopTimingContext(false, 0, false, 0);
+
+    private static final ThreadLocal<HopTimingContext> CURRENT = new ThreadLocal<>();
+
+    private final boolean sampled;
+
+    private final long startNanos;
+
+    private final boolean fromUpstream;
+
+    private final long waitMicros;
+
+    private final AtomicLong queueNanos = new AtomicLong();
+
+    private final AtomicLong overheadNanos = new AtomicLong();
+
+    private final StringBuilder downstream = new StringBuilder();
+
+    private HopTimingContext(boolean sampled, long startNanos, boolean fromUpstream, long waitMicros) {
+        this.sampled = sampled;
+        this.startNanos = startNanos;
+        this.fromUpstream = fromUpstream;
+        this.waitMicros = waitMicros;
+    }
+
+    /**
+     * 本跳是入口，自己决定采样，没有上游，也就没有wait
+     */
+    public static HopTimingContext sampledAtEntry(long startNanos) {
+        return new HopTimingContext(true, startNanos, false, 0);
+    }
+
+    /**
+     * 沿用上游的采样决定，waitMicros为上游发出到本跳开始处理的等待
+     */
+    public static HopTimingContext sampledFromUpstream(long startNanos, long waitMicros) {
+        return new HopTimingContext(true, startNanos, true, waitMicros);
+    }
+
+    public static HopTimingContext current() {
+        return CURRENT.get();
+    }
+
+    public static void set(HopTimingContext context) {
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public boolean isFromUpstream() {
+        return fromUpstream;
+    }
+
+    public long getWaitMicros() {
+        return waitMicros;
+    }
+
+    /**
+     * 发给下游的X-Hop-Start请求头
+     */
+    public String startHeaderValue() {
+        return sampled ? String.valueOf(System.currentTimeMillis()) : "0";
+    }
+
+    public void addQueueNanos(long nanos) {
+        if (sampled) {
+            queueNanos.addAndGet(nanos);
+        }
+    }
+
+    public void addOverheadNanos(long nanos) {
+        if (sampled) {
+            overheadNanos.addAndGet(nanos);
+        }
+    }
+
+    public long getOverheadNanos() {
+        return overheadNanos.get();
+    }
+
+    /**
+     * 收集下游返回的X-Hop-Timing响应头，并行调用多个下游时会在不同线程追加
+     */
+    public synchronized void addDownstream(String timing) {
+        if (!sampled || timing == null || timing.isEmpty()) {
+            return;
+        }
+        if (downstream.length() > 0) {
+            downstream.append(", ");
+        }
+        downstream.append(timing);
+    }
+
+    /**
+     * 下游记录加上本跳记录，作为返回给上游的X-Hop-Timing响应头
+     */
+    public synchronized String timingHeaderValue(String hopName, long durationNanos) {
+        StringBuilder value = new StringBuilder(downstream.length() + 64);
+        if (downstream.length() > 0) {
+            value.append(downstream).append(", ");
+        }
+        value.append(hopName)
+                .append(";dur=").append(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+        if (fromUpstream) {
+            value.append(";wait=").append(waitMicros);
+        }
+        long queue = queueNanos.get();
+        if (queue > 0) {
+            value.append(";queue=").append(TimeUnit.NANOSECONDS.toMicros(queue));
+        }
+        return value.toString();
+    }
+
+    /**
+     * X-Hop-Timing中最后一条记录的跳名称，也就是直接处理本次调用的下游实例，没有时返回null
+     */
+    public static String lastHopName(String timing) {
+        if (timing == null) {
+            return null;
+        }
+        int start = timing.lastIndexOf(',') + 1;
+        int end = timing.indexOf(';', start);
+        String hopName = (end < 0 ? timing.substring(start) : timing.substring(start, end)).trim();
+        return hopName.isEmpty() ? null : hopName;
+    }
+}
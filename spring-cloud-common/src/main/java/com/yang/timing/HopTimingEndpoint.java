@@ -0,0 +1,34 @@
+package com.yang.timing;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 暴露延迟直方图：GET /actuator/hoptiming 查看
+ * 1、需要配置：management.endpoints.web.exposure.include=health,info,hoptiming
+ * 2、结果中包含路由、下游实例id、服务地址等内部调用链信息，只在内部服务上通过web暴露；对外的网关不要加到exposure.include中，通过JMX查看。
+ * 3、清零只通过JMX提供（HopTimingJmxEndpointExtension），web上没有写操作。
+ */
+@Endpoint(id = "hoptiming")
+public class HopTimingEndpoint {
+
+    private final HopTimingRegistry registry;
+
+    public HopTimingEndpoint(HopTimingRegistry registry) {
+        this.registry = registry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> hopTiming() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hop", registry.getHopName());
+        result.put("sampleRate", registry.getSampleRate());
+        result.put("effectiveSampleRate", registry.getEffectiveSampleRate());
+        result.put("maxOverheadMicros", registry.getMaxOverheadMicros());
+        result.put("histograms", registry.snapshot());
+        return result;
+    }
+}
@@ -0,0 +1,246 @@
+package com.yang.timing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每一跳的入口计时
+ * 1、信任上游且有合法的X-Hop-Start请求头时沿用上游的采样决定，并用时间戳差值计算等待时间；否则本跳就是入口，由本跳按采样率决定，不记录wait。
+ * 2、未采样的请求只绑定共享的NOT_SAMPLED上下文，不创建对象也不包装响应；其中按采样率抽查一部分，记录未采样请求上的开销。
+ * 3、采样的请求不缓存响应体：包装响应，在第一次获取输出流、flush、sendError或sendRedirect（即响应提交之前）时写入X-Hop-Timing响应头，
+ *    这时业务处理和下游调用已经结束，dur是到开始写响应为止的耗时；hop直方图记录的是请求处理完的总耗时，异步请求在完成时记录。
+ * 4、actuator的请求（包括轮询/actuator/hoptiming本身）不计时，避免混在业务请求里影响分位数。
+ */
+public class HopTimingFilter extends OncePerRequestFilter {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(HopTimingFilter.class);
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    private final HopTimingRegistry registry;
+
+    private final boolean trustUpstream;
+
+    private final boolean exposeHeader;
+
+    private final String excludedPathPrefix;
+
+    private final LatencyHistogram hopHistogram;
+
+    private final LatencyHistogram waitHistogram;
+
+    private final LatencyHistogram unsampledOverheadHistogram;
+
+    public HopTimingFilter(HopTimingRegistry registry, HopTimingProperties properties, String excludedPathPrefix) {
+        this.registry = registry;
+        this.trustUpstream = properties.isTrustUpstream();
+        this.exposeHeader = properties.isExposeHeader();
+        this.excludedPathPrefix = excludedPathPrefix;
+        this.hopHistogram = registry.histogram(HopTimingRegistry.HOP, registry.getHopName());
+        this.waitHistogram = registry.histogram(HopTimingRegistry.WAIT, registry.getHopName());
+        this.unsampledOverheadHistogram = registry.histogram(HopTimingRegistry.OVERHEAD_UNSAMPLED, registry.getHopName());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return excludedPathPrefix != null && !excludedPathPrefix.isEmpty()
+                && urlPathHelper.getPathWithinApplication(request).startsWith(excludedPathPrefix);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long startNanos = System.nanoTime();
+        long upstreamStartMillis = trustUpstream ? parseStartHeader(request.getHeader(HopTimingContext.START_HEADER)) : -1;
+        boolean sampled = upstreamStartMillis < 0 ? registry.sample() : upstreamStartMillis > 0;
+        if (!sampled) {
+            doFilterNotSampled(request, response, filterChain, startNanos);
+            return;
+        }
+
+        HopTimingContext context = upstreamStartMillis > 0
+                ? HopTimingContext.sampledFromUpstream(startNanos, waitMicros(upstreamStartMillis))
+                : HopTimingContext.sampledAtEntry(startNanos);
+        TimingResponseWrapper responseWrapper = new TimingResponseWrapper(response, context);
+        HopTimingContext.set(context);
+        long overheadNanos = System.nanoTime() - startNanos;
+        try {
+            filterChain.doFilter(request, responseWrapper);
+        } finally {
+            long endNanos = System.nanoTime();
+            HopTimingContext.clear();
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new TimingAsyncListener(context, overheadNanos));
+            } else {
+                responseWrapper.writeTimingHeader();
+                recordWait(context);
+                hopHistogram.record(endNanos - startNanos);
+                registry.recordOverhead(overheadNanos + context.getOverheadNanos() + System.nanoTime() - endNanos);
+            }
+        }
+    }
+
+    /**
+     * 未采样时按采样率抽查开销，抽查本身只多一次随机数
+     */
+    private void doFilterNotSampled(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+                                    long startNanos) throws ServletException, IOException {
+        boolean probe = registry.sample();
+        HopTimingContext.set(HopTimingContext.NOT_SAMPLED);
+        long overheadNanos = probe ? System.nanoTime() - startNanos : 0;
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long endNanos = probe ? System.nanoTime() : 0;
+            HopTimingContext.clear();
+            if (probe) {
+                unsampledOverheadHistogram.record(overheadNanos + System.nanoTime() - endNanos);
+            }
+        }
+    }
+
+    /**
+     * 解析上游的X-Hop-Start：返回毫秒时间戳，0表示上游决定不采样，-1表示没有或不合法（由本跳自己决定）
+     */
+    static long parseStartHeader(String upstreamStart) {
+        if (upstreamStart == null) {
+            return -1;
+        }
+        try {
+            long startMillis = Long.parseLong(upstreamStart.trim());
+            return startMillis >= 0 ? startMillis : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 本跳是入口时没有上游，不记录wait，避免0混进分位数
+     */
+    private void recordWait(HopTimingContext context) {
+        if (context.isFromUpstream()) {
+            waitHistogram.record(TimeUnit.MICROSECONDS.toNanos(context.getWaitMicros()));
+        }
+    }
+
+    private static long waitMicros(long upstreamStartMillis) {
+        long waitMillis = System.currentTimeMillis() - upstreamStartMillis;
+        return waitMillis > 0 ? TimeUnit.MILLISECONDS.toMicros(waitMillis) : 0;
+    }
+
+    /**
+     * 在响应提交之前写入X-Hop-Timing响应头，不缓存响应体，流式响应和大响应不受影响
+     */
+    private class TimingResponseWrapper extends HttpServletResponseWrapper {
+
+        private final HopTimingContext context;
+
+        private boolean headerWritten;
+
+        TimingResponseWrapper(HttpServletResponse response, HopTimingContext context) {
+            super(response);
+            this.context = context;
+        }
+
+        void writeTimingHeader() {
+            if (headerWritten) {
+                return;
+            }
+            headerWritten = true;
+            long headerStartNanos = System.nanoTime();
+            if (exposeHeader) {
+                if (!isCommitted()) {
+                    setHeader(HopTimingContext.TIMING_HEADER,
+                            context.timingHeaderValue(registry.getHopName(), headerStartNanos - context.getStartNanos()));
+                }
+            } else if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("hop timing:{}", context.timingHeaderValue(registry.getHopName(), headerStartNanos - context.getStartNanos()));
+            }
+            context.addOverheadNanos(System.nanoTime() - headerStartNanos);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeTimingHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeTimingHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeTimingHeader();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            writeTimingHeader();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            writeTimingHeader();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            writeTimingHeader();
+            super.sendRedirect(location);
+        }
+    }
+
+    /**
+     * 异步请求在doFilter返回时还没有处理完，等异步完成（包括超时、出错）时再记录
+     */
+    private class TimingAsyncListener implements AsyncListener {
+
+        private final HopTimingContext context;
+
+        private final long overheadNanos;
+
+        TimingAsyncListener(HopTimingContext context, long overheadNanos) {
+            this.context = context;
+            this.overheadNanos = overheadNanos;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            recordWait(context);
+            hopHistogram.record(System.nanoTime() - context.getStartNanos());
+            registry.recordOverhead(overheadNanos + context.getOverheadNanos());
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
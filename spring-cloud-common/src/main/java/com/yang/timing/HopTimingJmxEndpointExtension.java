@@ -0,0 +1,33 @@
+package com.yang.timing;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.EndpointJmxExtension;
+
+import java.util.Map;
+
+/**
+ * hoptiming端点的JMX扩展，在JMX中多提供一个清零操作（例如每轮压测前调用），web上不提供
+ */
+@EndpointJmxExtension(endpoint = HopTimingEndpoint.class)
+public class HopTimingJmxEndpointExtension {
+
+    private final HopTimingEndpoint endpoint;
+
+    private final HopTimingRegistry registry;
+
+    public HopTimingJmxEndpointExtension(HopTimingEndpoint endpoint, HopTimingRegistry registry) {
+        this.endpoint = endpoint;
+        this.registry = registry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> hopTiming() {
+        return endpoint.hopTiming();
+    }
+
+    @DeleteOperation
+    public void reset() {
+        registry.reset();
+    }
+}
@@ -0,0 +1,149 @@
+package com.yang.timing;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按维度保存延迟直方图，例如：route -> api-a、command -> UserServiceFeign#hello(String)、server -> 192.168.1.2:8081
+ * 1、两层Map分别以维度和key查找，查找时不拼接字符串；直方图只在第一次出现某个key时创建，之后的记录不再分配对象。
+ * 2、采样只在入口（没有上游X-Hop-Start请求头或不信任上游的一跳）做一次，结果通过请求头传给下游，保证同一条调用链要么每一跳都记录，要么都不记录。
+ * 3、采样率自动退避：每记录OVERHEAD_WINDOW次采样请求的开销，检查这一段的overhead p99，超过maxOverheadMicros时采样率减半（sampleRate翻倍），
+ *    低于一半时逐步恢复到配置的采样率。最多退避到配置的MAX_BACKOFF倍，退避之后每个窗口要经过更多的请求，倍数太大会很久才能恢复。
+ *    p99取的是2的幂分桶的上界，判断是粗粒度的。maxOverheadMicros为0时不退避。
+ */
+public class HopTimingRegistry {
+
+    /** 本跳处理请求的总耗时 */
+    public static final String HOP = "hop";
+    /** 从上游发出请求到本跳开始处理之间的等待（网络+容器排队），依赖各机器时钟基本一致 */
+    public static final String WAIT = "wait";
+    /** 采样请求上计时本身的开销：过滤器、响应头、RestTemplate/Feign包装、Hystrix线程传递、Zuul过滤器 */
+    public static final String OVERHEAD = "overhead";
+    /** 未采样请求上计时本身的开销，按采样率抽查，避免为了测量开销而给每个请求都增加开销 */
+    public static final String OVERHEAD_UNSAMPLED = "overhead-unsampled";
+    /** Zuul路由 */
+    public static final String ROUTE = "route";
+    /** Hystrix命令 */
+    public static final String COMMAND = "command";
+    /** Hystrix线程池排队 */
+    public static final String QUEUE = "queue";
+    /** 负载均衡选中的服务实例，key为host:port，记录的是客户端调用耗时（consumer中的RestTemplate/Feign） */
+    public static final String SERVER = "server";
+    /** 网关转发到的下游实例，key为下游自己上报的实例id（eureka.instance.instance-id），记录的是网关转发耗时 */
+    public static final String INSTANCE = "instance";
+
+    static final int OVERHEAD_WINDOW = 1024;
+
+    static final int MAX_BACKOFF = 64;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+
+    private final String hopName;
+
+    private final int sampleRate;
+
+    private final long maxOverheadMicros;
+
+    private volatile int effectiveSampleRate;
+
+    private final LatencyHistogram overheadHistogram;
+
+    private final LatencyHistogram overheadWindow = new LatencyHistogram();
+
+    private final AtomicLong overheadWindowCount = new AtomicLong();
+
+    public HopTimingRegistry(String hopName, int sampleRate) {
+        this(hopName, sampleRate, 0);
+    }
+
+    public HopTimingRegistry(String hopName, int sampleRate, long maxOverheadMicros) {
+        this.hopName = hopName;
+        this.sampleRate = Math.max(sampleRate, 0);
+        this.maxOverheadMicros = Math.max(maxOverheadMicros, 0);
+        this.effectiveSampleRate = this.sampleRate;
+        this.overheadHistogram = histogram(OVERHEAD, hopName);
+    }
+
+    public String getHopName() {
+        return hopName;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getEffectiveSampleRate() {
+        return effectiveSampleRate;
+    }
+
+    public long getMaxOverheadMicros() {
+        return maxOverheadMicros;
+    }
+
+    /**
+     * 入口处的采样决定：每effectiveSampleRate个请求记录1个，为0时从不采样
+     */
+    public boolean sample() {
+        int rate = effectiveSampleRate;
+        return rate == 1 || (rate > 1 && ThreadLocalRandom.current().nextInt(rate) == 0);
+    }
+
+    /**
+     * 记录一次采样请求上计时本身的开销，并按窗口检查是否需要调整采样率
+     */
+    public void recordOverhead(long nanos) {
+        overheadHistogram.record(nanos);
+        if (maxOverheadMicros == 0) {
+            return;
+        }
+        overheadWindow.record(nanos);
+        if (overheadWindowCount.incrementAndGet() % OVERHEAD_WINDOW == 0) {
+            adjustSampleRate();
+        }
+    }
+
+    synchronized void adjustSampleRate() {
+        long p99 = overheadWindow.percentileMicros(99);
+        overheadWindow.reset();
+        int rate = effectiveSampleRate;
+        if (p99 > maxOverheadMicros && rate < sampleRate * MAX_BACKOFF) {
+            effectiveSampleRate = rate * 2;
+        } else if (p99 * 2 < maxOverheadMicros && rate > sampleRate) {
+            effectiveSampleRate = Math.max(rate / 2, sampleRate);
+        }
+    }
+
+    public LatencyHistogram histogram(String dimension, String key) {
+        ConcurrentMap<String, LatencyHistogram> byKey = histograms.get(dimension);
+        if (byKey == null) {
+            byKey = histograms.computeIfAbsent(dimension, d -> new ConcurrentHashMap<>());
+        }
+        LatencyHistogram histogram = byKey.get(key);
+        if (histogram == null) {
+            histogram = byKey.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        return histogram;
+    }
+
+    public void record(String dimension, String key, long nanos) {
+        histogram(dimension, key).record(nanos);
+    }
+
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> snapshot = new TreeMap<>();
+        histograms.forEach((dimension, byKey) -> {
+            Map<String, Object> dimensionSnapshot = new TreeMap<>();
+            byKey.forEach((key, histogram) -> dimensionSnapshot.put(key, histogram.snapshot()));
+            snapshot.put(dimension, dimensionSnapshot);
+        });
+        return snapshot;
+    }
+
+    public void reset() {
+        histograms.values().forEach(byKey -> byKey.values().forEach(LatencyHistogram::reset));
+    }
+}
@@ -0,0 +1,89 @@
+package com.yang.timing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁、无对象分配的延迟直方图
+ * 1、以微秒为单位按2的幂分桶：第0个桶为[0,2)微秒，第i个桶为[2^i, 2^(i+1))微秒，最后一个桶兜底所有更大的值（约35分钟以上）。
+ * 2、record()只做几次原子自增，不创建任何对象，可以放在请求的热路径上；分位数取所在桶的上界，误差不超过一倍，用来定位哪一跳慢足够了。
+ * 3、snapshot()会创建Map，只在actuator端点读取时调用。
+ */
+public class LatencyHistogram {
+
+    static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong sumMicros = new AtomicLong();
+
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = nanos < 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(nanos);
+        buckets.incrementAndGet(bucketIndex(micros));
+        sumMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * 估算分位数，返回所在桶的上界（微秒）
+     */
+    public long percentileMicros(double percentile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundMicros(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        sumMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    public Map<String, Object> snapshot() {
+        long count = count();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", count);
+        snapshot.put("meanMicros", count == 0 ? 0 : sumMicros.get() / count);
+        snapshot.put("p50Micros", percentileMicros(50));
+        snapshot.put("p90Micros", percentileMicros(90));
+        snapshot.put("p99Micros", percentileMicros(99));
+        snapshot.put("maxMicros", maxMicros.get());
+        return snapshot;
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < 2) {
+            return 0;
+        }
+        return Math.min(63 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+    }
+
+    static long upperBoundMicros(int index) {
+        return index == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (index + 1)) - 1;
+    }
+}
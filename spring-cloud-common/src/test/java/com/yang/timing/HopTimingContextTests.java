@@ -0,0 +1,33 @@
+package com.yang.timing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HopTimingContextTests {
+
+	@Test
+	public void notSampledIgnoresDownstream() {
+		HopTimingContext.NOT_SAMPLED.addDownstream("spring-cloud-provider_8801;dur=10;wait=0");
+
+		assertEquals("0", HopTimingContext.NOT_SAMPLED.startHeaderValue());
+		assertEquals("hop;dur=1", HopTimingContext.NOT_SAMPLED.timingHeaderValue("hop", 1000));
+	}
+
+	@Test
+	public void waitIsOnlyReportedWithUpstream() {
+		assertEquals("hop;dur=1", HopTimingContext.sampledAtEntry(0).timingHeaderValue("hop", 1000));
+		assertEquals("hop;dur=1;wait=0", HopTimingContext.sampledFromUpstream(0, 0).timingHeaderValue("hop", 1000));
+	}
+
+	@Test
+	public void lastHopNameIsTheDirectDownstream() {
+		assertEquals("spring-cloud-consumer_8085", HopTimingContext.lastHopName(
+				"spring-cloud-provider_8801;dur=10;wait=0, spring-cloud-consumer_8085;dur=50;wait=0;queue=3"));
+		assertEquals("spring-cloud-provider_8801", HopTimingContext.lastHopName("spring-cloud-provider_8801;dur=10;wait=0"));
+		assertNull(HopTimingContext.lastHopName(null));
+		assertNull(HopTimingContext.lastHopName(""));
+	}
+
+}
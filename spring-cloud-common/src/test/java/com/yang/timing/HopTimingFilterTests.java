@@ -0,0 +1,130 @@
+package com.yang.timing;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HopTimingFilterTests {
+
+	private HopTimingRegistry registry;
+
+	private final AtomicReference<HopTimingContext> seen = new AtomicReference<>();
+
+	@After
+	public void contextIsClearedAfterRequest() {
+		assertNull(HopTimingContext.current());
+	}
+
+	@Test
+	public void entryHopSamplesWithoutHeader() throws Exception {
+		MockHttpServletResponse response = filter(1, true, true, new MockHttpServletRequest("GET", "/consumer"), null);
+
+		assertTrue(seen.get().isSampled());
+		assertTrue(response.getHeader(HopTimingContext.TIMING_HEADER).startsWith("hop;dur="));
+		assertEquals("ok", response.getContentAsString());
+		assertEquals(1, registry.histogram(HopTimingRegistry.HOP, "hop").count());
+		assertEquals(0, registry.histogram(HopTimingRegistry.WAIT, "hop").count());
+	}
+
+	@Test
+	public void upstreamZeroMeansNotSampled() throws Exception {
+		MockHttpServletResponse response = filter(1, true, true, request("0"), null);
+
+		assertSame(HopTimingContext.NOT_SAMPLED, seen.get());
+		assertNull(response.getHeader(HopTimingContext.TIMING_HEADER));
+		assertEquals("ok", response.getContentAsString());
+		assertEquals(0, registry.histogram(HopTimingRegistry.HOP, "hop").count());
+	}
+
+	@Test
+	public void upstreamTimestampMeansSampled() throws Exception {
+		filter(0, true, true, request(String.valueOf(System.currentTimeMillis() - 5)), null);
+
+		assertTrue(seen.get().isSampled());
+		assertEquals(1, registry.histogram(HopTimingRegistry.WAIT, "hop").count());
+	}
+
+	@Test
+	public void invalidHeaderFallsBackToOwnDecision() throws Exception {
+		filter(0, true, true, request("abc"), null);
+
+		assertSame(HopTimingContext.NOT_SAMPLED, seen.get());
+	}
+
+	@Test
+	public void untrustedUpstreamIsIgnored() throws Exception {
+		filter(0, false, true, request("1"), null);
+
+		assertSame(HopTimingContext.NOT_SAMPLED, seen.get());
+	}
+
+	@Test
+	public void ownEntryIsAppendedAfterDownstream() throws Exception {
+		MockHttpServletResponse response = filter(1, true, true, new MockHttpServletRequest("GET", "/consumer"),
+				"spring-cloud-provider_8801;dur=10;wait=0");
+
+		assertTrue(response.getHeader(HopTimingContext.TIMING_HEADER)
+				.startsWith("spring-cloud-provider_8801;dur=10;wait=0, hop;dur="));
+	}
+
+	@Test
+	public void headerIsHiddenWhenNotExposed() throws Exception {
+		MockHttpServletResponse response = filter(1, true, false, new MockHttpServletRequest("GET", "/consumer"), null);
+
+		assertNull(response.getHeader(HopTimingContext.TIMING_HEADER));
+		assertEquals(1, registry.histogram(HopTimingRegistry.HOP, "hop").count());
+	}
+
+	@Test
+	public void actuatorRequestsAreNotTimed() throws Exception {
+		MockHttpServletResponse response = filter(1, true, true, new MockHttpServletRequest("GET", "/actuator/hoptiming"), null);
+
+		assertNull(seen.get());
+		assertNull(response.getHeader(HopTimingContext.TIMING_HEADER));
+	}
+
+	@Test
+	public void parseStartHeader() {
+		assertEquals(-1, HopTimingFilter.parseStartHeader(null));
+		assertEquals(-1, HopTimingFilter.parseStartHeader("abc"));
+		assertEquals(-1, HopTimingFilter.parseStartHeader("-5"));
+		assertEquals(0, HopTimingFilter.parseStartHeader("0"));
+		assertEquals(1234, HopTimingFilter.parseStartHeader("1234"));
+	}
+
+	private MockHttpServletRequest request(String startHeader) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/consumer");
+		request.addHeader(HopTimingContext.START_HEADER, startHeader);
+		return request;
+	}
+
+	private MockHttpServletResponse filter(int sampleRate, boolean trustUpstream, boolean exposeHeader,
+										   MockHttpServletRequest request, String downstream) throws Exception {
+		HopTimingProperties properties = new HopTimingProperties();
+		properties.setSampleRate(sampleRate);
+		properties.setTrustUpstream(trustUpstream);
+		properties.setExposeHeader(exposeHeader);
+		registry = new HopTimingRegistry("hop", sampleRate);
+		HopTimingFilter filter = new HopTimingFilter(registry, properties, "/actuator");
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, (req, res) -> {
+			HopTimingContext context = HopTimingContext.current();
+			seen.set(context);
+			if (context != null) {
+				context.addDownstream(downstream);
+			}
+			res.getWriter().write("ok");
+		});
+		return response;
+	}
+
+}
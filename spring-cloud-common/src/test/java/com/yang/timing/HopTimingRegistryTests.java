@@ -0,0 +1,60 @@
+package com.yang.timing;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class HopTimingRegistryTests {
+
+	@Test
+	public void sampleRateBacksOffWhenOverheadExceedsBound() {
+		HopTimingRegistry registry = new HopTimingRegistry("hop", 10, 100);
+
+		recordOverhead(registry, 500);
+		assertEquals(20, registry.getEffectiveSampleRate());
+		recordOverhead(registry, 500);
+		assertEquals(40, registry.getEffectiveSampleRate());
+		assertEquals(10, registry.getSampleRate());
+	}
+
+	@Test
+	public void sampleRateRecoversToConfiguredRate() {
+		HopTimingRegistry registry = new HopTimingRegistry("hop", 10, 100);
+		recordOverhead(registry, 500);
+		recordOverhead(registry, 500);
+
+		recordOverhead(registry, 10);
+		assertEquals(20, registry.getEffectiveSampleRate());
+		recordOverhead(registry, 10);
+		recordOverhead(registry, 10);
+		assertEquals(10, registry.getEffectiveSampleRate());
+	}
+
+	@Test
+	public void backoffIsCapped() {
+		HopTimingRegistry registry = new HopTimingRegistry("hop", 1, 100);
+
+		for (int i = 0; i < 10; i++) {
+			recordOverhead(registry, 500);
+		}
+		assertEquals(HopTimingRegistry.MAX_BACKOFF, registry.getEffectiveSampleRate());
+	}
+
+	@Test
+	public void zeroBoundNeverBacksOff() {
+		HopTimingRegistry registry = new HopTimingRegistry("hop", 10, 0);
+
+		recordOverhead(registry, 500);
+		assertEquals(10, registry.getEffectiveSampleRate());
+		assertEquals(HopTimingRegistry.OVERHEAD_WINDOW, registry.histogram(HopTimingRegistry.OVERHEAD, "hop").count());
+	}
+
+	private static void recordOverhead(HopTimingRegistry registry, long micros) {
+		for (int i = 0; i < HopTimingRegistry.OVERHEAD_WINDOW; i++) {
+			registry.recordOverhead(TimeUnit.MICROSECONDS.toNanos(micros));
+		}
+	}
+
+}
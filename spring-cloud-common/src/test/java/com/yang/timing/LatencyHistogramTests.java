@@ -0,0 +1,46 @@
+package com.yang.timing;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTests {
+
+	@Test
+	public void bucketsArePowersOfTwoInMicros() {
+		assertEquals(0, LatencyHistogram.bucketIndex(0));
+		assertEquals(0, LatencyHistogram.bucketIndex(1));
+		assertEquals(1, LatencyHistogram.bucketIndex(2));
+		assertEquals(1, LatencyHistogram.bucketIndex(3));
+		assertEquals(10, LatencyHistogram.bucketIndex(1024));
+		assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void percentilesUseBucketUpperBound() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+		assertEquals(100, histogram.count());
+		assertEquals(127, histogram.percentileMicros(50));
+		assertEquals(127, histogram.percentileMicros(99));
+		assertEquals(50000, histogram.percentileMicros(100));
+		assertEquals(50000L, histogram.snapshot().get("maxMicros"));
+	}
+
+	@Test
+	public void resetClearsAllBuckets() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+		histogram.reset();
+
+		assertEquals(0, histogram.count());
+		assertEquals(0, histogram.percentileMicros(99));
+	}
+
+}
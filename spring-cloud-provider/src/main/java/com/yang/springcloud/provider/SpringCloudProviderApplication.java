@@ -1,16 +1,20 @@
 package com.yang.springcloud.provider;
 
+import com.yang.timing.HopTimingConfiguration;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.netflix.eureka.EnableEurekaClient;
+import org.springframework.context.annotation.Import;
 
 /**
  * 如果注册中心是Eureka，推荐使用注解：@EnableEurekaClient
  * 如果注册中心是其他的，则使用：@EnableDiscoveryClient
+ * @Import(HopTimingConfiguration.class)：记录本跳耗时，并通过X-Hop-Timing响应头返回给调用方
  *
  */
 @SpringBootApplication
 @EnableEurekaClient
+@Import(HopTimingConfiguration.class)
 public class SpringCloudProviderApplication {
 
 	public static void main(String[] args) {
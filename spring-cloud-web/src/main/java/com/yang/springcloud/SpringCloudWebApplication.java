@@ -2,12 +2,17 @@ package com.yang.springcloud;
 
 import com.netflix.loadbalancer.IRule;
 import com.netflix.loadbalancer.RandomRule;
+import com.yang.springcloud.web.timing.HopTimingClientHttpRequestFactory;
+import com.yang.timing.HopTimingConfiguration;
+import com.yang.timing.HopTimingRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.web.client.RestTemplate;
 
 //@SpringCloudApplication //这个注解 涵盖了下面这三个注解，可以直接只是用下面这一个，说明一个Spring Cloud标准应用应该包含服务发现以及断路器
@@ -15,6 +20,7 @@ import org.springframework.web.client.RestTemplate;
 @EnableDiscoveryClient //启用注册服务与发现服务
 //@EnableCircuitBreaker  //开启熔断机制
 @EnableFeignClients //Feign功能包含了Ribbon与Hystrix
+@Import(HopTimingConfiguration.class) //跳间计时，通过/actuator/hoptiming查看
 //这个自定义配置类不能放在@ComponentScan所扫描的包以及子包下面，否则这个自定义配置类会被所有的Ribbon客户端所共享，也就是定义成了全局的了，就达不到特殊化定制的目的了。
 //@RibbonClient(value = "spring-cloud-provider",configuration = MySelfRule.class) //对于调用spring-cloud-provider服务，使用我们自己的负载均衡策略
 public class SpringCloudWebApplication {
@@ -25,8 +31,12 @@ public class SpringCloudWebApplication {
 
     @Bean
     @LoadBalanced
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(ObjectProvider<HopTimingRegistry> hopTimingRegistry) {
+        RestTemplate restTemplate = new RestTemplate();
+        //包装底层的请求工厂，拿到的是负载均衡之后真实的服务实例地址，按server统计耗时。这时还没有加拦截器，getRequestFactory()返回的就是底层的请求工厂
+        hopTimingRegistry.ifAvailable(registry ->
+                restTemplate.setRequestFactory(new HopTimingClientHttpRequestFactory(restTemplate.getRequestFactory(), registry)));
+        return restTemplate;
     }
 
     //修改默认负载均衡算法，会覆盖Spring Cloud Ribbon默认的负载均衡算法，这个是全局的Ribbon负载均衡策略配置。需要自定义看上面的@RibbonClient
@@ -0,0 +1,79 @@
+package com.yang.springcloud.web.timing;
+
+import com.netflix.hystrix.strategy.HystrixPlugins;
+import com.netflix.hystrix.strategy.concurrency.HystrixConcurrencyStrategy;
+import com.netflix.hystrix.strategy.eventnotifier.HystrixEventNotifier;
+import com.netflix.hystrix.strategy.executionhook.HystrixCommandExecutionHook;
+import com.netflix.hystrix.strategy.metrics.HystrixMetricsPublisher;
+import com.netflix.hystrix.strategy.properties.HystrixPropertiesStrategy;
+import com.yang.timing.HopTimingRegistry;
+import feign.Client;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.cloud.openfeign.ribbon.CachingSpringLoadBalancerFactory;
+import org.springframework.cloud.openfeign.ribbon.LoadBalancerFeignClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * consumer调用provider时的计时：Feign按服务实例统计、Hystrix按命令和线程池统计
+ * 本服务的application.yml没有打开feign.hystrix.enabled，Feign调用不经过Hystrix，command、queue直方图不会注册；
+ * 需要这两个直方图时在启用了Hystrix的环境中配置feign.hystrix.enabled=true（这会改变调用行为：超时、熔断、fallback），计时本身不会打开它
+ * RestTemplate的计时在SpringCloudWebApplication.restTemplate()中设置
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "hop.timing", name = "enabled", matchIfMissing = true)
+public class HopTimingClientConfiguration {
+
+    @Autowired
+    private HopTimingRegistry hopTimingRegistry;
+
+    /**
+     * 替换FeignRibbonClientAutoConfiguration中默认的Client，负载均衡仍然由LoadBalancerFeignClient完成，只是把真正发请求的Client包装了一层
+     */
+    @Bean
+    public Client feignClient(CachingSpringLoadBalancerFactory cachingFactory, SpringClientFactory clientFactory) {
+        return new LoadBalancerFeignClient(new HopTimingFeignClient(new Client.Default(null, null), hopTimingRegistry),
+                cachingFactory, clientFactory);
+    }
+
+    @Bean
+    public HopTimingFeignInterceptor hopTimingFeignInterceptor() {
+        return new HopTimingFeignInterceptor();
+    }
+
+    /**
+     * Hystrix的插件只能注册一次，所以先取出已有的插件，reset之后再把包装过的和原来的一起注册回去
+     * 本服务中只有Feign的调用经过Hystrix（@HystrixCommand都被注释掉了），所以只在feign.hystrix.enabled=true时注册，
+     * 否则queue、command直方图始终为空，没有必要去reset全局的Hystrix插件
+     * 必须在第一个Hystrix命令执行之前注册，@PostConstruct在容器启动阶段执行，这时还没有请求进来
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "feign.hystrix.enabled", havingValue = "true")
+    static class HystrixPluginsConfiguration {
+
+        @Autowired
+        private HopTimingRegistry hopTimingRegistry;
+
+        @PostConstruct
+        public void registerHystrixPlugins() {
+            HystrixPlugins plugins = HystrixPlugins.getInstance();
+            HystrixConcurrencyStrategy concurrencyStrategy = plugins.getConcurrencyStrategy();
+            HystrixEventNotifier eventNotifier = plugins.getEventNotifier();
+            HystrixMetricsPublisher metricsPublisher = plugins.getMetricsPublisher();
+            HystrixPropertiesStrategy propertiesStrategy = plugins.getPropertiesStrategy();
+            HystrixCommandExecutionHook commandExecutionHook = plugins.getCommandExecutionHook();
+
+            HystrixPlugins.reset();
+            plugins = HystrixPlugins.getInstance();
+            plugins.registerConcurrencyStrategy(new HopTimingHystrixConcurrencyStrategy(concurrencyStrategy, hopTimingRegistry));
+            plugins.registerEventNotifier(eventNotifier);
+            plugins.registerMetricsPublisher(metricsPublisher);
+            plugins.registerPropertiesStrategy(propertiesStrategy);
+            plugins.registerCommandExecutionHook(new HopTimingHystrixExecutionHook(commandExecutionHook, hopTimingRegistry));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.yang.springcloud.web.timing;
+
+import com.yang.timing.HopTimingContext;
+import com.yang.timing.HopTimingRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * 包装RestTemplate底层的请求工厂，而不是增加一个拦截器
+ * 原因：@LoadBalanced是通过LoadBalancerInterceptor把服务名替换成真实地址的，拦截器之间的顺序不好保证，
+ * 而底层请求工厂总是在所有拦截器之后才被调用，这里拿到的URI一定是Ribbon选中的服务实例，可以按server统计耗时。
+ */
+public class HopTimingClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private final ClientHttpRequestFactory delegate;
+
+    private final HopTimingRegistry registry;
+
+    public HopTimingClientHttpRequestFactory(ClientHttpRequestFactory delegate, HopTimingRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        ClientHttpRequest request = delegate.createRequest(uri, httpMethod);
+        HopTimingContext context = HopTimingContext.current();
+        if (context == null) {
+            return request;
+        }
+        long startNanos = System.nanoTime();
+        request.getHeaders().set(HopTimingContext.START_HEADER, context.startHeaderValue());
+        if (!context.isSampled()) {
+            return request;
+        }
+        String authority = uri.getAuthority();
+        HopTimingClientHttpRequest timingRequest = new HopTimingClientHttpRequest(request, context, registry,
+                authority != null ? authority : "unknown");
+        context.addOverheadNanos(System.nanoTime() - startNanos);
+        return timingRequest;
+    }
+
+    private static class HopTimingClientHttpRequest implements ClientHttpRequest {
+
+        private final ClientHttpRequest delegate;
+
+        private final HopTimingContext context;
+
+        private final HopTimingRegistry registry;
+
+        private final String server;
+
+        HopTimingClientHttpRequest(ClientHttpRequest delegate, HopTimingContext context, HopTimingRegistry registry, String server) {
+            this.delegate = delegate;
+            this.context = context;
+            this.registry = registry;
+            this.server = server;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            long startNanos = System.nanoTime();
+            ClientHttpResponse response = null;
+            try {
+                response = delegate.execute();
+                return response;
+            } finally {
+                long endNanos = System.nanoTime();
+                registry.record(HopTimingRegistry.SERVER, server, endNanos - startNanos);
+                if (response != null) {
+                    context.addDownstream(response.getHeaders().getFirst(HopTimingContext.TIMING_HEADER));
+                }
+                context.addOverheadNanos(System.nanoTime() - endNanos);
+            }
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public String getMethodValue() {
+            return delegate.getMethodValue();
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+    }
+}
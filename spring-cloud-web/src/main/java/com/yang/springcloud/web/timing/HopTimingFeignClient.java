@@ -0,0 +1,78 @@
+package com.yang.springcloud.web.timing;
+
+import com.yang.timing.HopTimingContext;
+import com.yang.timing.HopTimingRegistry;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Feign的真正发送请求的Client，被LoadBalancerFeignClient包装在里面，收到的url已经是Ribbon选中的服务实例
+ * X-Hop-Start请求头由HopTimingFeignInterceptor添加
+ */
+public class HopTimingFeignClient implements Client {
+
+    private static final String UNKNOWN_SERVER = "unknown";
+
+    private final Client delegate;
+
+    private final HopTimingRegistry registry;
+
+    public HopTimingFeignClient(Client delegate, HopTimingRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        HopTimingContext context = HopTimingContext.current();
+        if (context == null || !context.isSampled()) {
+            return delegate.execute(request, options);
+        }
+        long prepareNanos = System.nanoTime();
+        String server = authority(request.url());
+        long startNanos = System.nanoTime();
+        Response response = null;
+        try {
+            response = delegate.execute(request, options);
+            return response;
+        } finally {
+            long endNanos = System.nanoTime();
+            registry.record(HopTimingRegistry.SERVER, server, endNanos - startNanos);
+            if (response != null) {
+                Collection<String> timing = response.headers().get(HopTimingContext.TIMING_HEADER);
+                if (timing != null && !timing.isEmpty()) {
+                    context.addDownstream(timing.iterator().next());
+                }
+            }
+            context.addOverheadNanos(startNanos - prepareNanos + System.nanoTime() - endNanos);
+        }
+    }
+
+    /**
+     * 直接从url字符串中截取host:port，不会抛出异常，解析不了时返回unknown
+     */
+    static String authority(String url) {
+        if (url == null) {
+            return UNKNOWN_SERVER;
+        }
+        int schemeEnd = url.indexOf("://");
+        int start = schemeEnd < 0 ? 0 : schemeEnd + 3;
+        int end = url.length();
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        int userInfoEnd = url.lastIndexOf('@', end - 1);
+        if (userInfoEnd >= start) {
+            start = userInfoEnd + 1;
+        }
+        return end > start ? url.substring(start, end) : UNKNOWN_SERVER;
+    }
+}
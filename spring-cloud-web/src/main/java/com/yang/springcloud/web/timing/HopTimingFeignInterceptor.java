@@ -0,0 +1,19 @@
+package com.yang.springcloud.web.timing;
+
+import com.yang.timing.HopTimingContext;
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+
+/**
+ * Feign调用下游时带上X-Hop-Start请求头，把采样决定和发出时间传给下游
+ */
+public class HopTimingFeignInterceptor implements RequestInterceptor {
+
+    @Override
+    public void apply(RequestTemplate template) {
+        HopTimingContext context = HopTimingContext.current();
+        if (context != null) {
+            template.header(HopTimingContext.START_HEADER, context.startHeaderValue());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.yang.springcloud.web.timing;
+
+import com.netflix.hystrix.HystrixThreadPoolKey;
+import com.netflix.hystrix.HystrixThreadPoolProperties;
+import com.netflix.hystrix.strategy.concurrency.HystrixConcurrencyStrategy;
+import com.netflix.hystrix.strategy.concurrency.HystrixRequestVariable;
+import com.netflix.hystrix.strategy.concurrency.HystrixRequestVariableLifecycle;
+import com.netflix.hystrix.strategy.properties.HystrixProperty;
+import com.yang.timing.HopTimingContext;
+import com.yang.timing.HopTimingRegistry;
+import com.yang.timing.LatencyHistogram;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程隔离的Hystrix命令在线程池中执行，这里做两件事：
+ * 1、把HopTimingContext传递到Hystrix线程，下游调用才能带上X-Hop-Start请求头、收集X-Hop-Timing响应头。
+ * 2、wrapCallable()在调用线程提交任务时执行，call()在线程池线程开始执行时执行，两者的时间差就是任务在线程池队列中的等待时间。
+ *    getThreadPool()创建线程池时包装它的ThreadFactory，线程池中的每个线程启动时都绑定所属线程池（HystrixThreadPoolKey）的直方图，
+ *    按线程池统计；HystrixTimer等其他线程没有绑定，不统计。
+ * 其他方法全部委托给原来的策略。
+ */
+public class HopTimingHystrixConcurrencyStrategy extends HystrixConcurrencyStrategy {
+
+    //线程池线程所属线程池的queue直方图，由tag()包装的ThreadFactory在线程启动时设置
+    private static final ThreadLocal<LatencyHistogram> QUEUE_HISTOGRAM = new ThreadLocal<>();
+
+    private final HystrixConcurrencyStrategy delegate;
+
+    private final HopTimingRegistry registry;
+
+    public HopTimingHystrixConcurrencyStrategy(HystrixConcurrencyStrategy delegate, HopTimingRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    @Override
+    public ThreadPoolExecutor getThreadPool(HystrixThreadPoolKey threadPoolKey, HystrixProperty<Integer> corePoolSize,
+                                            HystrixProperty<Integer> maximumPoolSize, HystrixProperty<Integer> keepAliveTime,
+                                            TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+        return tag(threadPoolKey, delegate.getThreadPool(threadPoolKey, corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue));
+    }
+
+    @Override
+    public ThreadPoolExecutor getThreadPool(HystrixThreadPoolKey threadPoolKey, HystrixThreadPoolProperties threadPoolProperties) {
+        return tag(threadPoolKey, delegate.getThreadPool(threadPoolKey, threadPoolProperties));
+    }
+
+    /**
+     * Hystrix创建线程池时还没有启动任何线程，替换ThreadFactory之后线程池中的所有线程都会带上线程池的直方图
+     */
+    ThreadPoolExecutor tag(HystrixThreadPoolKey threadPoolKey, ThreadPoolExecutor executor) {
+        LatencyHistogram histogram = registry.histogram(HopTimingRegistry.QUEUE, threadPoolKey.name());
+        ThreadFactory threadFactory = executor.getThreadFactory();
+        executor.setThreadFactory(runnable -> threadFactory.newThread(() -> {
+            QUEUE_HISTOGRAM.set(histogram);
+            runnable.run();
+        }));
+        return executor;
+    }
+
+    @Override
+    public BlockingQueue<Runnable> getBlockingQueue(int maxQueueSize) {
+        return delegate.getBlockingQueue(maxQueueSize);
+    }
+
+    @Override
+    public <T> HystrixRequestVariable<T> getRequestVariable(HystrixRequestVariableLifecycle<T> rv) {
+        return delegate.getRequestVariable(rv);
+    }
+
+    @Override
+    public <T> Callable<T> wrapCallable(Callable<T> callable) {
+        Callable<T> wrapped = delegate.wrapCallable(callable);
+        HopTimingContext context = HopTimingContext.current();
+        if (context == null) {
+            return wrapped;
+        }
+        long submitNanos = System.nanoTime();
+        HopTimingCallable<T> timingCallable = new HopTimingCallable<>(wrapped, context, submitNanos);
+        context.addOverheadNanos(System.nanoTime() - submitNanos);
+        return timingCallable;
+    }
+
+    private class HopTimingCallable<T> implements Callable<T> {
+
+        private final Callable<T> delegate;
+
+        private final HopTimingContext context;
+
+        private final long submitNanos;
+
+        HopTimingCallable(Callable<T> delegate, HopTimingContext context, long submitNanos) {
+            this.delegate = delegate;
+            this.context = context;
+            this.submitNanos = submitNanos;
+        }
+
+        @Override
+        public T call() throws Exception {
+            long startNanos = System.nanoTime();
+            if (context.isSampled()) {
+                LatencyHistogram histogram = QUEUE_HISTOGRAM.get();
+                if (histogram != null) {
+                    long waitNanos = startNanos - submitNanos;
+                    histogram.record(waitNanos);
+                    context.addQueueNanos(waitNanos);
+                }
+            }
+            HopTimingContext previous = HopTimingContext.current();
+            HopTimingContext.set(context);
+            context.addOverheadNanos(System.nanoTime() - startNanos);
+            try {
+                return delegate.call();
+            } finally {
+                HopTimingContext.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.yang.springcloud.web.timing;
+
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixInvokable;
+import com.netflix.hystrix.HystrixInvokableInfo;
+import com.netflix.hystrix.exception.HystrixRuntimeException;
+import com.netflix.hystrix.strategy.executionhook.HystrixCommandExecutionHook;
+import com.yang.timing.HopTimingRegistry;
+import com.yang.timing.LatencyHistogram;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按commandKey统计Hystrix命令的执行耗时，不含线程池排队（排队见HopTimingHystrixConcurrencyStrategy）
+ * 1、onExecutionStart在run()开始之前执行（线程隔离时在线程池线程上），记下开始时间；
+ *    onExecutionSuccess、onExecutionError在run()成功或抛出异常后执行，记录耗时，失败的调用也会统计。
+ * 2、超时的命令由HystrixTimer线程结束，run()可能还没返回：在onFallbackStart（没有启用fallback时是onError）中记录到超时为止的耗时。
+ *    开始时间按命令对象保存，谁先取走谁记录，超时后run()再返回也不会重复记录。
+ * 3、这里不按请求采样，每次执行都记录：超时是在HystrixTimer线程上处理的，拿不到请求的上下文，按请求采样会把最慢的那部分丢掉。
+ * 其他方法全部委托给原来的hook。
+ */
+public class HopTimingHystrixExecutionHook extends HystrixCommandExecutionHook {
+
+    private final HystrixCommandExecutionHook delegate;
+
+    private final HopTimingRegistry registry;
+
+    //命令对象只执行一次，直接用作key
+    private final ConcurrentMap<HystrixInvokable<?>, Long> executionStartNanos = new ConcurrentHashMap<>();
+
+    //HystrixCommandKey由Factory缓存，同一个命令总是同一个对象，直接用作key，避免每次拼接名称
+    private final ConcurrentMap<HystrixCommandKey, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    public HopTimingHystrixExecutionHook(HystrixCommandExecutionHook delegate, HopTimingRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    private void recordExecution(HystrixInvokable<?> commandInstance) {
+        Long startNanos = executionStartNanos.remove(commandInstance);
+        if (startNanos == null || !(commandInstance instanceof HystrixInvokableInfo)) {
+            return;
+        }
+        HystrixCommandKey key = ((HystrixInvokableInfo<?>) commandInstance).getCommandKey();
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(key, k -> registry.histogram(HopTimingRegistry.COMMAND, k.name()));
+        }
+        histogram.record(System.nanoTime() - startNanos);
+    }
+
+    private static boolean isTimedOut(HystrixInvokable<?> commandInstance) {
+        return commandInstance instanceof HystrixInvokableInfo && ((HystrixInvokableInfo<?>) commandInstance).isResponseTimedOut();
+    }
+
+    @Override
+    public <T> void onExecutionStart(HystrixInvokable<T> commandInstance) {
+        executionStartNanos.put(commandInstance, System.nanoTime());
+        delegate.onExecutionStart(commandInstance);
+    }
+
+    @Override
+    public <T> void onExecutionSuccess(HystrixInvokable<T> commandInstance) {
+        recordExecution(commandInstance);
+        delegate.onExecutionSuccess(commandInstance);
+    }
+
+    @Override
+    public <T> Exception onExecutionError(HystrixInvokable<T> commandInstance, Exception e) {
+        recordExecution(commandInstance);
+        return delegate.onExecutionError(commandInstance, e);
+    }
+
+    @Override
+    public <T> void onFallbackStart(HystrixInvokable<T> commandInstance) {
+        if (isTimedOut(commandInstance)) {
+            recordExecution(commandInstance);
+        }
+        delegate.onFallbackStart(commandInstance);
+    }
+
+    @Override
+    public <T> Exception onError(HystrixInvokable<T> commandInstance, HystrixRuntimeException.FailureType failureType, Exception e) {
+        if (failureType == HystrixRuntimeException.FailureType.TIMEOUT) {
+            recordExecution(commandInstance);
+        }
+        return delegate.onError(commandInstance, failureType, e);
+    }
+
+    /**
+     * 调用方取消订阅时run()可能既没有结束也没有超时，这里清理掉开始时间，不记录
+     */
+    @Override
+    public <T> void onUnsubscribe(HystrixInvokable<T> commandInstance) {
+        executionStartNanos.remove(commandInstance);
+        delegate.onUnsubscribe(commandInstance);
+    }
+
+    @Override
+    public <T> void onStart(HystrixInvokable<T> commandInstance) {
+        delegate.onStart(commandInstance);
+    }
+
+    @Override
+    public <T> T onEmit(HystrixInvokable<T> commandInstance, T value) {
+        return delegate.onEmit(commandInstance, value);
+    }
+
+    @Override
+    public <T> void onSuccess(HystrixInvokable<T> commandInstance) {
+        delegate.onSuccess(commandInstance);
+    }
+
+    @Override
+    public <T> void onThreadStart(HystrixInvokable<T> commandInstance) {
+        delegate.onThreadStart(commandInstance);
+    }
+
+    @Override
+    public <T> void onThreadComplete(HystrixInvokable<T> commandInstance) {
+        delegate.onThreadComplete(commandInstance);
+    }
+
+    @Override
+    public <T> T onExecutionEmit(HystrixInvokable<T> commandInstance, T value) {
+        return delegate.onExecutionEmit(commandInstance, value);
+    }
+
+    @Override
+    public <T> T onFallbackEmit(HystrixInvokable<T> commandInstance, T value) {
+        return delegate.onFallbackEmit(commandInstance, value);
+    }
+
+    @Override
+    public <T> Exception onFallbackError(HystrixInvokable<T> commandInstance, Exception e) {
+        return delegate.onFallbackError(commandInstance, e);
+    }
+
+    @Override
+    public <T> void onFallbackSuccess(HystrixInvokable<T> commandInstance) {
+        delegate.onFallbackSuccess(commandInstance);
+    }
+
+    @Override
+    public <T> void onCacheHit(HystrixInvokable<T> commandInstance) {
+        delegate.onCacheHit(commandInstance);
+    }
+
+    //以下是已废弃的方法，Hystrix仍然会调用，同样委托给原来的hook
+
+    @Override
+    @Deprecated
+    public <T> void onRunStart(HystrixCommand<T> commandInstance) {
+        delegate.onRunStart(commandInstance);
+    }
+
+    @Override
+    @Deprecated
+    public <T> void onRunStart(HystrixInvokable<T> commandInstance) {
+        delegate.onRunStart(commandInstance);
+    }
+
+    @Override
+    @Deprecated
+    public <T> T onRunSuccess(HystrixCommand<T> commandInstance, T response) {
+        return delegate.onRunSuccess(commandInstance, response);
+    }
+
+    @Override
+    @Deprecated
+    public <T> T onRunSuccess(HystrixInvokable<T> commandInstance, T response) {
+        return delegate.onRunSuccess(commandInstance, response);
+    }
+
+    @Override
+    @Deprecated
+    public <T> Exception onRunError(HystrixCommand<T> commandInstance, Exception e) {
+        return delegate.onRunError(commandInstance, e);
+    }
+
+    @Override
+    @Deprecated
+    public <T> Exception onRunError(HystrixInvokable<T> commandInstance, Exception e) {
+        return delegate.onRunError(commandInstance, e);
+    }
+
+    @Override
+    @Deprecated
+    public <T> void onFallbackStart(HystrixCommand<T> commandInstance) {
+        delegate.onFallbackStart(commandInstance);
+    }
+
+    @Override
+    @Deprecated
+    public <T> T onFallbackSuccess(HystrixCommand<T> commandInstance, T fallbackResponse) {
+        return delegate.onFallbackSuccess(commandInstance, fallbackResponse);
+    }
+
+    @Override
+    @Deprecated
+    public <T> T onFallbackSuccess(HystrixInvokable<T> commandInstance, T fallbackResponse) {
+        return delegate.onFallbackSuccess(commandInstance, fallbackResponse);
+    }
+
+    @Override
+    @Deprecated
+    public <T> Exception onFallbackError(HystrixCommand<T> commandInstance, Exception e) {
+        return delegate.onFallbackError(commandInstance, e);
+    }
+
+    @Override
+    @Deprecated
+    public <T> void onStart(HystrixCommand<T> commandInstance) {
+        delegate.onStart(commandInstance);
+    }
+
+    @Override
+    @Deprecated
+    public <T> T onComplete(HystrixCommand<T> commandInstance, T response) {
+        return delegate.onComplete(commandInstance, response);
+    }
+
+    @Override
+    @Deprecated
+    public <T> T onComplete(HystrixInvokable<T> commandInstance, T response) {
+        return delegate.onComplete(commandInstance, response);
+    }
+
+    @Override
+    @Deprecated
+    public <T> Exception onError(HystrixCommand<T> commandInstance, HystrixRuntimeException.FailureType failureType, Exception e) {
+        return delegate.onError(commandInstance, failureType, e);
+    }
+
+    @Override
+    @Deprecated
+    public <T> void onThreadStart(HystrixCommand<T> commandInstance) {
+        delegate.onThreadStart(commandInstance);
+    }
+
+    @Override
+    @Deprecated
+    public <T> void onThreadComplete(HystrixCommand<T> commandInstance) {
+        delegate.onThreadComplete(commandInstance);
+    }
+}
@@ -0,0 +1,88 @@
+package com.yang.springcloud.web.timing;
+
+import com.netflix.hystrix.HystrixThreadPoolKey;
+import com.netflix.hystrix.strategy.concurrency.HystrixConcurrencyStrategyDefault;
+import com.yang.timing.HopTimingContext;
+import com.yang.timing.HopTimingRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class HopTimingHystrixConcurrencyStrategyTests {
+
+	private final HopTimingRegistry registry = new HopTimingRegistry("hop", 1);
+
+	private final HopTimingHystrixConcurrencyStrategy strategy =
+			new HopTimingHystrixConcurrencyStrategy(HystrixConcurrencyStrategyDefault.getInstance(), registry);
+
+	@After
+	public void clearContext() {
+		HopTimingContext.clear();
+	}
+
+	@Test
+	public void contextIsPropagatedToTaggedPoolThreadAndQueueWaitRecorded() throws Exception {
+		ThreadPoolExecutor executor = strategy.tag(HystrixThreadPoolKey.Factory.asKey("spring-cloud-provider"),
+				new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+						runnable -> new Thread(runnable, "worker")));
+		try {
+			HopTimingContext context = HopTimingContext.sampledAtEntry(System.nanoTime());
+			HopTimingContext.set(context);
+			Callable<HopTimingContext> callable = strategy.wrapCallable(HopTimingContext::current);
+
+			assertSame(context, executor.submit(callable).get());
+			assertNull(executor.submit(HopTimingContext::current).get());
+			assertEquals(1, registry.histogram(HopTimingRegistry.QUEUE, "spring-cloud-provider").count());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void untaggedThreadDoesNotRecordQueueWait() throws Exception {
+		HopTimingContext context = HopTimingContext.sampledAtEntry(System.nanoTime());
+		HopTimingContext.set(context);
+		Callable<HopTimingContext> callable = strategy.wrapCallable(HopTimingContext::current);
+
+		AtomicReference<HopTimingContext> seen = new AtomicReference<>();
+		Thread thread = new Thread(() -> {
+			try {
+				seen.set(callable.call());
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}, "hystrix-spring-cloud-provider-1");
+		thread.start();
+		thread.join();
+
+		assertSame(context, seen.get());
+		assertNull(registry.snapshot().get(HopTimingRegistry.QUEUE));
+	}
+
+	@Test
+	public void notSampledContextIsPropagatedWithoutTiming() throws Exception {
+		HopTimingContext.set(HopTimingContext.NOT_SAMPLED);
+		Callable<HopTimingContext> callable = strategy.wrapCallable(HopTimingContext::current);
+		HopTimingContext.clear();
+
+		assertSame(HopTimingContext.NOT_SAMPLED, callable.call());
+		assertNull(HopTimingContext.current());
+	}
+
+	@Test
+	public void withoutContextCallableIsNotWrapped() {
+		Callable<String> callable = () -> "ok";
+
+		assertSame(callable, strategy.wrapCallable(callable));
+	}
+
+}
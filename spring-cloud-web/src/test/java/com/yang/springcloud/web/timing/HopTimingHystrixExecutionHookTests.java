@@ -0,0 +1,87 @@
+package com.yang.springcloud.web.timing;
+
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixInvokable;
+import com.netflix.hystrix.exception.HystrixRuntimeException;
+import com.netflix.hystrix.strategy.executionhook.HystrixCommandExecutionHook;
+import com.yang.timing.HopTimingRegistry;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HopTimingHystrixExecutionHookTests {
+
+	private final HopTimingRegistry registry = new HopTimingRegistry("hop", 1);
+
+	private final HopTimingHystrixExecutionHook hook =
+			new HopTimingHystrixExecutionHook(new HystrixCommandExecutionHook() {
+			}, registry);
+
+	@Test
+	public void successAndFailureAreRecorded() {
+		HystrixInvokable<String> success = new TestCommand("hookSuccess", false);
+		hook.onExecutionStart(success);
+		hook.onExecutionSuccess(success);
+
+		HystrixInvokable<String> failure = new TestCommand("hookFailure", false);
+		hook.onExecutionStart(failure);
+		hook.onExecutionError(failure, new IllegalStateException());
+
+		assertEquals(1, registry.histogram(HopTimingRegistry.COMMAND, "hookSuccess").count());
+		assertEquals(1, registry.histogram(HopTimingRegistry.COMMAND, "hookFailure").count());
+	}
+
+	@Test
+	public void timeoutIsRecordedOnceWhenRunReturnsLater() {
+		HystrixInvokable<String> command = new TestCommand("hookTimeout", true);
+		hook.onExecutionStart(command);
+		hook.onFallbackStart(command);
+		hook.onError(command, HystrixRuntimeException.FailureType.TIMEOUT, new IllegalStateException());
+		hook.onExecutionSuccess(command);
+
+		assertEquals(1, registry.histogram(HopTimingRegistry.COMMAND, "hookTimeout").count());
+	}
+
+	@Test
+	public void timeoutWithoutFallbackIsRecordedOnError() {
+		HystrixInvokable<String> command = new TestCommand("hookTimeoutNoFallback", true);
+		hook.onExecutionStart(command);
+		hook.onError(command, HystrixRuntimeException.FailureType.TIMEOUT, new IllegalStateException());
+
+		assertEquals(1, registry.histogram(HopTimingRegistry.COMMAND, "hookTimeoutNoFallback").count());
+	}
+
+	@Test
+	public void fallbackAfterFailureIsNotRecordedTwice() {
+		HystrixInvokable<String> command = new TestCommand("hookFallback", false);
+		hook.onExecutionStart(command);
+		hook.onExecutionError(command, new IllegalStateException());
+		hook.onFallbackStart(command);
+
+		assertEquals(1, registry.histogram(HopTimingRegistry.COMMAND, "hookFallback").count());
+	}
+
+	private static class TestCommand extends HystrixCommand<String> {
+
+		private final boolean timedOut;
+
+		TestCommand(String commandKey, boolean timedOut) {
+			super(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("hook"))
+					.andCommandKey(HystrixCommandKey.Factory.asKey(commandKey)));
+			this.timedOut = timedOut;
+		}
+
+		@Override
+		protected String run() {
+			return "ok";
+		}
+
+		@Override
+		public boolean isResponseTimedOut() {
+			return timedOut;
+		}
+	}
+
+}
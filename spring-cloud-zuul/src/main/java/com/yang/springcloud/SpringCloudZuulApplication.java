@@ -1,11 +1,14 @@
 package com.yang.springcloud;
 
+import com.yang.timing.HopTimingConfiguration;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.netflix.zuul.EnableZuulProxy;
+import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
 @EnableZuulProxy
+@Import(HopTimingConfiguration.class) //跳间计时，通过/actuator/hoptiming查看各路由以及整条链路每一跳的耗时
 public class SpringCloudZuulApplication {
 
 	public static void main(String[] args) {
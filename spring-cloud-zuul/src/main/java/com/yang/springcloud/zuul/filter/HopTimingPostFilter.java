@@ -0,0 +1,86 @@
+package com.yang.springcloud.zuul.filter;
+
+import com.netflix.util.Pair;
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import com.yang.timing.HopTimingContext;
+import com.yang.timing.HopTimingProperties;
+import com.yang.timing.HopTimingRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.POST_TYPE;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PROXY_KEY;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.SEND_RESPONSE_FILTER_ORDER;
+
+/**
+ * 路由完成后的计时，放在SendResponseFilter之前执行
+ * 1、按路由（zuul.routes.xxx中的xxx）统计耗时，从HopTimingPreFilter记下的转发开始时间算起，到收到下游响应为止。
+ * 2、按下游实例统计同样的耗时，记在instance维度下（consumer的server维度按host:port统计，两者的key不一样，所以不放在一起）：
+ *    Ribbon在网关里选中的实例没有暴露到RequestContext中，这里取下游X-Hop-Timing中最后一条记录的跳名称，
+ *    也就是直接处理这次转发的下游实例自己上报的实例id（eureka.instance.instance-id）。
+ * 3、收集下游的X-Hop-Timing，网关自己这一跳的记录由HopTimingFilter追加到后面；
+ *    hop.timing.expose-header=false时把下游的X-Hop-Timing从响应头中去掉，不把内部调用链暴露给外部客户端。
+ */
+@Component
+@ConditionalOnProperty(prefix = "hop.timing", name = "enabled", matchIfMissing = true)
+public class HopTimingPostFilter extends ZuulFilter {
+
+    private final HopTimingRegistry registry;
+
+    private final boolean exposeHeader;
+
+    public HopTimingPostFilter(HopTimingRegistry registry, HopTimingProperties properties) {
+        this.registry = registry;
+        this.exposeHeader = properties.isExposeHeader();
+    }
+
+    @Override
+    public String filterType() {
+        return POST_TYPE;
+    }
+
+    @Override
+    public int filterOrder() {
+        return SEND_RESPONSE_FILTER_ORDER - 1;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        return HopTimingContext.current() != null && RequestContext.getCurrentContext().get(PROXY_KEY) != null;
+    }
+
+    @Override
+    public Object run() {
+        long startNanos = System.nanoTime();
+        RequestContext ctx = RequestContext.getCurrentContext();
+        HopTimingContext context = HopTimingContext.current();
+        String downstream = null;
+        Iterator<Pair<String, String>> headers = ctx.getZuulResponseHeaders().iterator();
+        while (headers.hasNext()) {
+            Pair<String, String> header = headers.next();
+            if (HopTimingContext.TIMING_HEADER.equalsIgnoreCase(header.first())) {
+                downstream = header.second();
+                if (!exposeHeader) {
+                    headers.remove();
+                }
+            }
+        }
+        Object routeStartNanos = ctx.get(HopTimingPreFilter.ROUTE_START_NANOS_KEY);
+        if (!context.isSampled() || routeStartNanos == null) {
+            return null;
+        }
+
+        long routeNanos = startNanos - (Long) routeStartNanos;
+        registry.record(HopTimingRegistry.ROUTE, (String) ctx.get(PROXY_KEY), routeNanos);
+        String instance = HopTimingContext.lastHopName(downstream);
+        if (instance != null) {
+            registry.record(HopTimingRegistry.INSTANCE, instance, routeNanos);
+        }
+        context.addDownstream(downstream);
+        context.addOverheadNanos(System.nanoTime() - startNanos);
+        return null;
+    }
+}
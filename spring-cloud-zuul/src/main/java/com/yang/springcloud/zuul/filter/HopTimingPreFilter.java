@@ -0,0 +1,51 @@
+package com.yang.springcloud.zuul.filter;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import com.yang.timing.HopTimingContext;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PRE_DECORATION_FILTER_ORDER;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PRE_TYPE;
+
+/**
+ * 转发前带上X-Hop-Start请求头，把网关的采样决定和发出时间传给下游服务
+ * 放在PreDecorationFilter之后执行，这时已经确定了要转发的路由
+ * 客户端自己带来的X-Hop-Start不会被信任（网关配置了hop.timing.trust-upstream=false），这里设置的值会覆盖它再转发给下游
+ * 采样的请求在RequestContext中记下转发开始的时间，HopTimingPostFilter从这里开始计算路由耗时，不包括转发之前的pre过滤器（例如AccessFilter）
+ */
+@Component
+@ConditionalOnProperty(prefix = "hop.timing", name = "enabled", matchIfMissing = true)
+public class HopTimingPreFilter extends ZuulFilter {
+
+    public static final String ROUTE_START_NANOS_KEY = "hopTimingRouteStartNanos";
+
+    @Override
+    public String filterType() {
+        return PRE_TYPE;
+    }
+
+    @Override
+    public int filterOrder() {
+        return PRE_DECORATION_FILTER_ORDER + 1;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        return HopTimingContext.current() != null;
+    }
+
+    @Override
+    public Object run() {
+        long startNanos = System.nanoTime();
+        HopTimingContext context = HopTimingContext.current();
+        RequestContext ctx = RequestContext.getCurrentContext();
+        ctx.addZuulRequestHeader(HopTimingContext.START_HEADER, context.startHeaderValue());
+        if (context.isSampled()) {
+            ctx.set(ROUTE_START_NANOS_KEY, startNanos);
+        }
+        context.addOverheadNanos(System.nanoTime() - startNanos);
+        return null;
+    }
+}